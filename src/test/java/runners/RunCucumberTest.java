@@ -14,6 +14,8 @@ import org.junit.runner.RunWith;
  * - It indicates that step definitions (the code that ties Gherkin steps to Java methods)
  *   are located in the "steps" and "utils" packages.
  * - It sets the output to "pretty", meaning the test results will be printed in a readable format.
+ * - It skips scenarios tagged @live-probe, which put load on the real API. Run them on purpose with
+ *   "mvn test -Dcucumber.filter.tags=@live-probe" (the system property replaces the tags below).
  * - It uses PicoContainer for dependency injection so that shared objects (like our TestContext)
  *   are automatically provided to our step classes.
  *
@@ -30,6 +32,7 @@ import org.junit.runner.RunWith;
         features = "src/test/resources/features",
         glue = {"steps", "utils"},
         plugin = {"pretty"},
+        tags = "not @live-probe",
         monochrome = true,
         objectFactory = io.cucumber.picocontainer.PicoFactory.class
 )
@@ -0,0 +1,173 @@
+package steps;
+
+import io.cucumber.java.After;
+import io.cucumber.java.en.Given;
+import io.cucumber.java.en.Then;
+import io.cucumber.java.en.When;
+import io.restassured.RestAssured;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.core.config.Configurator;
+import utils.BookingStandIn;
+import utils.CapacityProbe;
+import utils.TestContext;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * CapacitySteps runs the capacity probe, which finds the concurrency at which the booking API stops
+ * delivering more throughput (see CapacityProbe).
+ *
+ * The probe scenarios reuse the request logic of BookingSteps and AuthSteps: every worker gets its own
+ * TestContext and step objects and calls the same step methods a feature file would, in a loop.
+ *
+ * The probe is checked against BookingStandIn, a local server with a known capacity. Probing the real
+ * API puts load on a shared public service, so those scenarios are tagged @live-probe and only run
+ * when selected explicitly (see RunCucumberTest).
+ */
+public class CapacitySteps {
+
+    private static final Logger logger = LogManager.getLogger(CapacitySteps.class);
+
+    // Loggers that write a line per request; they are turned down while the probe runs.
+    private static final String[] REQUEST_LOGGERS = {
+            BookingSteps.class.getName(), AuthSteps.class.getName(), TestContext.class.getName()
+    };
+
+    private BookingStandIn standIn;
+    private CapacityProbe.Report report;
+
+    /**
+     * Starts a local stand-in for the booking API and points RestAssured at it.
+     * Hooks resets the base URI before the next scenario.
+     *
+     * @param slots         how many requests the stand-in serves at the same time.
+     * @param serviceMillis how long the stand-in takes per request.
+     */
+    @Given("a local booking stand-in that serves {int} requests at a time in {int} ms each")
+    public void a_local_booking_stand_in(int slots, int serviceMillis) {
+        standIn = new BookingStandIn(slots, serviceMillis);
+        try {
+            RestAssured.baseURI = standIn.start();
+        } catch (IOException e) {
+            logger.error("Could not start the booking stand-in", e);
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Runs the capacity probe for a named scenario against the current base URI.
+     *
+     * @param scenarioName        "create-then-get" or "create".
+     * @param maxConcurrency      the highest number of concurrent workers to try.
+     * @param latencyTargetMillis the p99 latency (per scenario iteration) a step may not exceed.
+     * @param stepSeconds         how long each concurrency level is measured.
+     */
+    @When("I probe the capacity of the {string} scenario up to {int} workers with a p99 target of {int} ms and {int} second steps")
+    public void i_probe_the_capacity(String scenarioName, int maxConcurrency, int latencyTargetMillis, int stepSeconds) {
+        CapacityProbe probe = new CapacityProbe(scenario(scenarioName));
+        probe.setMaxConcurrency(maxConcurrency);
+        probe.setLatencyTargetMillis(latencyTargetMillis);
+        probe.setStepMillis(stepSeconds * 1000L);
+
+        Map<String, Level> previousLevels = new HashMap<>();
+        for (String name : REQUEST_LOGGERS) {
+            previousLevels.put(name, LogManager.getLogger(name).getLevel());
+            Configurator.setLevel(name, Level.WARN);
+        }
+        try {
+            report = probe.run();
+        } finally {
+            Configurator.setLevel(previousLevels);
+        }
+    }
+
+    /**
+     * Asserts that the probe found a knee, i.e. at least one concurrency level stayed within the limits.
+     */
+    @Then("the probe should report a knee")
+    public void the_probe_should_report_a_knee() {
+        assertThat("Probe should find a sustainable concurrency", report.getKnee(), is(notNullValue()));
+    }
+
+    /**
+     * Asserts the concurrency at which the probe found the knee.
+     *
+     * @param min the lowest acceptable number of workers.
+     * @param max the highest acceptable number of workers.
+     */
+    @Then("the knee should be between {int} and {int} concurrent workers")
+    public void the_knee_should_be_between_workers(int min, int max) {
+        the_probe_should_report_a_knee();
+        int concurrency = report.getKnee().getConcurrency();
+        logger.info("Asserting knee concurrency {} is between {} and {}", concurrency, min, max);
+        assertThat(concurrency, is(both(greaterThanOrEqualTo(min)).and(lessThanOrEqualTo(max))));
+    }
+
+    /**
+     * Asserts the knee throughput as a percentage of the stand-in's known capacity.
+     *
+     * @param minPercent the lowest acceptable percentage.
+     * @param maxPercent the highest acceptable percentage.
+     */
+    @Then("the knee throughput should be between {int} and {int} percent of the stand-in capacity")
+    public void the_knee_throughput_should_be_between_percent(int minPercent, int maxPercent) {
+        the_probe_should_report_a_knee();
+        double percent = report.getKnee().getRequestsPerSecond() * 100 / standIn.getCapacityPerSecond();
+        logger.info("Asserting knee throughput {}% of capacity is between {}% and {}%", percent, minPercent, maxPercent);
+        assertThat(percent, is(both(greaterThanOrEqualTo((double) minPercent)).and(lessThanOrEqualTo((double) maxPercent))));
+    }
+
+    /**
+     * Stops the stand-in after the scenario, even if a step failed, so its server thread does not
+     * keep the JVM alive.
+     */
+    @After
+    public void stopStandIn() {
+        if (standIn != null) {
+            standIn.stop();
+        }
+    }
+
+    /**
+     * Builds a probe scenario from the existing booking steps.
+     */
+    private static CapacityProbe.Scenario scenario(String name) {
+        switch (name) {
+            case "create-then-get":
+                return new CapacityProbe.Scenario(name, 2, () -> {
+                    TestContext context = new TestContext();
+                    BookingSteps booking = new BookingSteps(context);
+                    AuthSteps status = new AuthSteps(context);
+                    booking.i_have_a_new_booking_payload();
+                    return () -> {
+                        booking.i_send_post_request_to_booking();
+                        status.response_status_code_should_be(200);
+                        booking.i_save_the_bookingid_from_response();
+                        booking.i_send_get_request_to_the_stored_booking();
+                        status.response_status_code_should_be(200);
+                    };
+                });
+            case "create":
+                return new CapacityProbe.Scenario(name, 1, () -> {
+                    TestContext context = new TestContext();
+                    BookingSteps booking = new BookingSteps(context);
+                    AuthSteps status = new AuthSteps(context);
+                    booking.i_have_a_new_booking_payload();
+                    return () -> {
+                        booking.i_send_post_request_to_booking();
+                        status.response_status_code_should_be(200);
+                    };
+                });
+            default:
+                throw new IllegalArgumentException("Unknown capacity probe scenario: " + name);
+        }
+    }
+}
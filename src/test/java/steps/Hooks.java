@@ -1,11 +1,13 @@
 package steps;
 
 import io.cucumber.java.After;
+import io.cucumber.java.AfterAll;
 import io.cucumber.java.Before;
 import io.cucumber.java.Scenario;
 import io.restassured.RestAssured;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import utils.RunMetrics;
 import utils.TestContext;
 
 /**
@@ -18,6 +20,10 @@ import utils.TestContext;
  * This class uses PicoContainer for dependency injection, meaning that the shared TestContext
  * (which holds data like API responses, tokens, and booking IDs) is automatically provided.
  *
+ * Both hooks also feed the optional live metrics endpoint (see RunMetrics): the endpoint is started
+ * before the first scenario, every scenario result is counted once it has finished, and the
+ * endpoint is stopped after the last scenario.
+ *
  * In simple terms, think of Hooks as the pre- and post-conditions for each test: it prepares
  * the environment before a test runs and cleans up (or logs results) afterward.
  */
@@ -39,28 +45,40 @@ public class Hooks {
 
     /**
      * This method is executed before each test scenario.
-     * It sets the API's base URI so that subsequent requests are directed to the correct server.
+     * It sets the API's base URI so that subsequent requests are directed to the correct server,
+     * and starts the metrics endpoint if the run was started with -Dmetrics.port.
      *
      * @param scenario the current scenario being executed.
      */
     @Before
     public void setUp(Scenario scenario) {
         RestAssured.baseURI = "https://restful-booker.herokuapp.com";
+        RunMetrics.startIfEnabled();
         logger.info("=== Starting Scenario: {} ===", scenario.getName());
     }
 
     /**
      * This method is executed after each test scenario.
-     * It logs the outcome of the scenario—whether it passed or failed.
+     * It logs the outcome of the scenario—whether it passed or failed—and counts it in RunMetrics.
      *
      * @param scenario the current scenario that has just finished.
      */
     @After
     public void tearDown(Scenario scenario) {
+        RunMetrics.scenarioFinished(scenario.isFailed());
         if (scenario.isFailed()) {
             logger.error("=== Scenario FAILED: {} ===", scenario.getName());
         } else {
             logger.info("=== Scenario PASSED: {} ===", scenario.getName());
         }
     }
+
+    /**
+     * This method is executed once, after all scenarios have finished.
+     * It stops the metrics endpoint (if it was started) and logs the final metric values.
+     */
+    @AfterAll
+    public static void stopMetrics() {
+        RunMetrics.stop();
+    }
 }
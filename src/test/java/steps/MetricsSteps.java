@@ -0,0 +1,264 @@
+package steps;
+
+import com.sun.net.httpserver.HttpServer;
+import io.cucumber.datatable.DataTable;
+import io.cucumber.java.After;
+import io.cucumber.java.en.Given;
+import io.cucumber.java.en.Then;
+import io.cucumber.java.en.When;
+import io.restassured.RestAssured;
+import io.restassured.config.RestAssuredConfig;
+import io.restassured.response.Response;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import utils.MetricsFilter;
+import utils.RunMetrics;
+import utils.TestContext;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+/**
+ * MetricsSteps checks the live metrics endpoint (see RunMetrics) from the outside: it scrapes
+ * /metrics like a monitoring system would and verifies the series and their values.
+ *
+ * Metric values add up over the whole run, so every check compares against a scrape taken when
+ * the scenario started instead of against absolute numbers. The traffic goes to a small local
+ * target server, so the expected counts do not depend on the real API.
+ */
+public class MetricsSteps {
+
+    private static final Logger logger = LogManager.getLogger(MetricsSteps.class);
+
+    private static final String HISTOGRAM = "booker_http_request_duration_seconds";
+
+    // Shared context; the scrape response is stored in it like any other API response.
+    private final TestContext context;
+    // True if this scenario started the endpoint, so it must also stop it.
+    private boolean startedHere;
+    // Series values when the scenario started, keyed by metric name plus labels.
+    private Map<String, Double> baseline;
+    // The text of the latest scrape.
+    private String exposition;
+    // Local server the scenario sends its requests to; null until started.
+    private HttpServer target;
+
+    /**
+     * Constructor: TestContext is injected by PicoContainer, which allows sharing data across steps.
+     *
+     * @param context the shared TestContext for the scenario.
+     */
+    public MetricsSteps(TestContext context) {
+        this.context = context;
+    }
+
+    /**
+     * Makes sure the metrics endpoint is running, starting it on a free port if the run was not
+     * started with -Dmetrics.port, and takes the baseline scrape.
+     */
+    @Given("the metrics endpoint is running")
+    public void the_metrics_endpoint_is_running() {
+        if (!RunMetrics.isRunning()) {
+            startedHere = RunMetrics.start(0, RunMetrics.DEFAULT_POOL_SIZE);
+            assertThat("Metrics endpoint should start", startedHere);
+        }
+        baseline = parse(scrape());
+    }
+
+    /**
+     * Starts a local target server that answers 200 with an empty JSON object for /booking and
+     * every path below it, and 404 for anything else.
+     */
+    @Given("a local target server that answers requests to \\/booking")
+    public void a_local_target_server() {
+        try {
+            target = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        } catch (IOException e) {
+            logger.error("Could not start the local target server", e);
+            throw new UncheckedIOException(e);
+        }
+        target.createContext("/", exchange -> {
+            String path = exchange.getRequestURI().getPath();
+            boolean found = path.equals("/booking") || path.startsWith("/booking/");
+            byte[] body = (found ? "{}" : "Not Found").getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(found ? 200 : 404, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        target.start();
+        logger.info("Local target server started on port {}", target.getAddress().getPort());
+    }
+
+    /**
+     * Sends requests to the local target server through RestAssured, so they are recorded
+     * like any other API call.
+     *
+     * @param count  how many requests to send.
+     * @param method the HTTP method, e.g. "GET".
+     * @param path   the request path, e.g. "/booking/42".
+     */
+    @When("I send {int} {word} request(s) to {string} on the local target server")
+    public void i_send_requests_to_the_local_target_server(int count, String method, String path) {
+        for (int i = 0; i < count; i++) {
+            logger.info("Sending {} request to {} on the local target server...", method, path);
+            Response response = RestAssured
+                    .given()
+                    .baseUri("http://127.0.0.1:" + target.getAddress().getPort())
+                    .when()
+                    .request(method, path)
+                    .then()
+                    .extract()
+                    .response();
+            logger.info("{} {} returned status: {}", method, path, response.getStatusCode());
+        }
+    }
+
+    /**
+     * Scrapes the metrics endpoint and stores the response in TestContext.
+     */
+    @When("I scrape the metrics endpoint")
+    public void i_scrape_the_metrics_endpoint() {
+        exposition = scrape();
+    }
+
+    /**
+     * Asserts the structure of the latest scrape: every sample line is well formed, every latency
+     * histogram has cumulative buckets ending in +Inf with a matching _count, and the text ends with "# EOF".
+     */
+    @Then("the metrics should be valid OpenMetrics text")
+    public void the_metrics_should_be_valid_openmetrics_text() {
+        assertThat(context.getResponse().getContentType(), startsWith("application/openmetrics-text"));
+        assertThat(exposition, endsWith("# EOF\n"));
+
+        Map<String, Double> lastBucket = new HashMap<>();
+        Map<String, Double> infBucket = new HashMap<>();
+        for (String line : exposition.split("\n")) {
+            if (line.startsWith("#")) {
+                continue;
+            }
+            assertThat("Malformed sample line: " + line,
+                    line.matches("[a-zA-Z_:][a-zA-Z0-9_:]*(\\{.*})? \\S+"));
+            if (line.startsWith(HISTOGRAM + "_bucket{")) {
+                String series = line.substring(line.indexOf('{'), line.indexOf(",le=\""));
+                double value = value(line);
+                Double previous = lastBucket.put(series, value);
+                assertThat("Buckets should be cumulative: " + line,
+                        previous == null || value >= previous);
+                if (line.contains("le=\"+Inf\"")) {
+                    infBucket.put(series, value);
+                }
+            }
+        }
+
+        assertThat("Expected at least one latency histogram", infBucket.isEmpty(), is(false));
+        for (Map.Entry<String, Double> entry : lastBucket.entrySet()) {
+            String series = entry.getKey();
+            assertThat("Histogram should end with a +Inf bucket: " + series, infBucket.get(series), is(entry.getValue()));
+            Double count = parse(exposition).get(HISTOGRAM + "_count" + series + "}");
+            logger.info("Asserting {} count {} equals +Inf bucket {}", series, count, infBucket.get(series));
+            assertThat(count, is(infBucket.get(series)));
+        }
+    }
+
+    /**
+     * Asserts how much a series has grown since the scenario started.
+     *
+     * @param series   the metric name with its labels, exactly as it appears in the scrape.
+     * @param expected the expected increase.
+     */
+    @Then("the metric {string} should have grown by {int}")
+    public void the_metric_should_have_grown_by(String series, int expected) {
+        double before = baseline.getOrDefault(series, 0.0);
+        double after = parse(exposition).getOrDefault(series, 0.0);
+        logger.info("Asserting {} grew by {} -> before: {}, after: {}", series, expected, before, after);
+        assertThat(after - before, is((double) expected));
+    }
+
+    /**
+     * Asserts that request paths are turned into the expected endpoint labels.
+     *
+     * @param table rows of "path" and the expected "endpoint"; an empty path cell stands for no path.
+     */
+    @Then("request paths should be reported like this:")
+    public void request_paths_should_be_reported_like_this(DataTable table) {
+        for (Map<String, String> row : table.asMaps()) {
+            String actual = MetricsFilter.normalise(row.get("path"));
+            logger.info("Asserting path {} -> expected: {}, actual: {}", row.get("path"), row.get("endpoint"), actual);
+            assertThat(actual, is(row.get("endpoint")));
+        }
+    }
+
+    /**
+     * Asserts that label values are escaped as OpenMetrics requires.
+     *
+     * @param table rows of a raw "value" and the expected "escaped" text.
+     */
+    @Then("label values should be escaped like this:")
+    public void label_values_should_be_escaped_like_this(DataTable table) {
+        for (Map<String, String> row : table.asMaps()) {
+            String actual = RunMetrics.escapeLabelValue(row.get("value"));
+            logger.info("Asserting escaped label value -> expected: {}, actual: {}", row.get("escaped"), actual);
+            assertThat(actual, is(row.get("escaped")));
+        }
+    }
+
+    /**
+     * Stops the local target server, and the endpoint if this scenario started it, which also puts
+     * RestAssured's configuration back for the scenarios that follow.
+     */
+    @After
+    public void stopMetricsIfStartedHere() {
+        if (target != null) {
+            target.stop(0);
+        }
+        if (startedHere) {
+            RunMetrics.stop();
+        }
+    }
+
+    // Scrapes bypass the metrics filter and the shared connection pool, so the published numbers only cover API traffic.
+    private String scrape() {
+        try {
+            Response response = RestAssured
+                    .given()
+                    .noFilters()
+                    .config(RestAssuredConfig.newConfig())
+                    .baseUri("http://127.0.0.1:" + RunMetrics.getPort())
+                    .when()
+                    .get("/metrics")
+                    .then()
+                    .extract()
+                    .response();
+            context.setResponse(response);
+            return response.asString();
+        } catch (Exception e) {
+            logger.error("Error while scraping the metrics endpoint", e);
+            throw e;
+        }
+    }
+
+    // Maps every sample line ("name{labels} value") to its value.
+    private static Map<String, Double> parse(String text) {
+        Map<String, Double> samples = new HashMap<>();
+        for (String line : text.split("\n")) {
+            if (!line.isEmpty() && !line.startsWith("#")) {
+                samples.put(line.substring(0, line.lastIndexOf(' ')), value(line));
+            }
+        }
+        return samples;
+    }
+
+    private static double value(String line) {
+        return Double.parseDouble(line.substring(line.lastIndexOf(' ') + 1));
+    }
+}
@@ -0,0 +1,159 @@
+package utils;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * BookingStandIn is a small local replacement for the booking API with a known capacity.
+ *
+ * <p>
+ * It serves {@code POST /booking} and {@code GET /booking/{id}} with the same response shape as the
+ * real API. Every request holds one of a fixed number of slots for a fixed service time; requests that
+ * find no free slot wait in line. Its maximum throughput is therefore exactly
+ * {@code slots * 1000 / serviceMillis} requests per second, and it saturates at about {@code slots}
+ * concurrent requests, which lets the CapacityProbe be checked against a known answer.
+ * </p>
+ *
+ * <p>
+ * The JVM must run with {@code -Dsun.net.httpserver.nodelay=true} (Surefire sets it in pom.xml).
+ * Without it the JDK server leaves Nagle's algorithm on, and every response waits about 40 ms
+ * for a delayed ACK, which hides the known capacity.
+ * </p>
+ */
+public class BookingStandIn {
+
+    private static final Logger logger = LogManager.getLogger(BookingStandIn.class);
+
+    private final int slots;
+    private final long serviceMillis;
+    private final Semaphore freeSlots;
+    private final AtomicInteger nextId = new AtomicInteger();
+    private final Map<Integer, String> bookings = new ConcurrentHashMap<>();
+
+    private HttpServer server;
+    private ExecutorService handlers;
+
+    /**
+     * Creates a stand-in; call {@link #start()} to begin serving.
+     *
+     * @param slots         how many requests are served at the same time.
+     * @param serviceMillis how long each request takes to serve.
+     */
+    public BookingStandIn(int slots, long serviceMillis) {
+        this.slots = slots;
+        this.serviceMillis = serviceMillis;
+        this.freeSlots = new Semaphore(slots, true);
+    }
+
+    /**
+     * Starts serving on a free port of the loopback interface.
+     *
+     * @return the base URI of the stand-in, e.g. "http://127.0.0.1:54321".
+     * @throws IOException if the server cannot be started.
+     */
+    public String start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/booking", this::handle);
+        // Unbounded handler threads, so waiting requests queue on the slots rather than in the socket backlog.
+        handlers = Executors.newCachedThreadPool(task -> {
+            Thread thread = new Thread(task, "booking-stand-in");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(handlers);
+        server.start();
+        String baseUri = "http://127.0.0.1:" + server.getAddress().getPort();
+        logger.info("Booking stand-in started on {} ({} slots, {} ms per request, {} req/s capacity)",
+                baseUri, slots, serviceMillis, getCapacityPerSecond());
+        return baseUri;
+    }
+
+    /**
+     * Stops the stand-in. Safe to call if it was never started.
+     */
+    public void stop() {
+        if (server != null) {
+            server.stop(0);
+            handlers.shutdownNow();
+            server = null;
+            logger.info("Booking stand-in stopped.");
+        }
+    }
+
+    /**
+     * Returns the maximum number of requests per second the stand-in can serve.
+     *
+     * @return the capacity in requests per second.
+     */
+    public double getCapacityPerSecond() {
+        return slots * 1000.0 / serviceMillis;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            freeSlots.acquire();
+            try {
+                Thread.sleep(serviceMillis);
+                route(exchange);
+            } finally {
+                freeSlots.release();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            respond(exchange, 503, "Service Unavailable");
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void route(HttpExchange exchange) throws IOException {
+        String method = exchange.getRequestMethod();
+        String path = exchange.getRequestURI().getPath();
+
+        if ("POST".equals(method) && "/booking".equals(path)) {
+            String booking = readBody(exchange);
+            int id = nextId.incrementAndGet();
+            bookings.put(id, booking);
+            respond(exchange, 200, "{\"bookingid\":" + id + ",\"booking\":" + booking + "}");
+            return;
+        }
+        if ("GET".equals(method) && path.matches("/booking/\\d+")) {
+            String booking = bookings.get(Integer.parseInt(path.substring("/booking/".length())));
+            if (booking != null) {
+                respond(exchange, 200, booking);
+                return;
+            }
+        }
+        respond(exchange, 404, "Not Found");
+    }
+
+    private static String readBody(HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", status == 200 ? "application/json" : "text/plain");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,522 @@
+package utils;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * CapacityProbe finds the saturation point ("knee") of the API by running a scenario with an
+ * increasing number of concurrent workers.
+ *
+ * <p>
+ * The concurrency is adjusted with an AIMD-style policy:
+ * </p>
+ * <ul>
+ *   <li>It starts with one worker and doubles the workers while throughput keeps rising by at least 10%.</li>
+ *   <li>As soon as a doubling gains less, or breaks the latency/error limits, it backs off to the last step
+ *       that made progress and continues in small additive steps from there. An additive step counts as
+ *       progress if it gains in proportion to the workers it added (10% for doubling, 2.5% for +25%).</li>
+ *   <li>It stops when throughput has stopped rising for two steps in a row, when a step exceeds the
+ *       p99 latency target or the maximum error rate, or after the maximum concurrency has been measured.</li>
+ * </ul>
+ *
+ * <p>
+ * The knee is taken from all steps that stayed within the limits: the lowest concurrency whose
+ * throughput is within {@value #KNEE_TOLERANCE_PERCENT}% of the highest throughput measured. This reports
+ * the maximum sustainable requests per second without paying for workers that add only noise.
+ * Each worker runs one unrecorded iteration before a step's measurement window opens, so class loading
+ * and connection setup do not count against the first steps.
+ * </p>
+ */
+public class CapacityProbe {
+
+    private static final Logger logger = LogManager.getLogger(CapacityProbe.class);
+
+    // A doubling must raise throughput by this fraction to count as progress; smaller steps need proportionally less.
+    private static final double MIN_GAIN = 0.10;
+
+    // Steps within this percentage of the highest throughput count as reaching it when picking the knee.
+    private static final int KNEE_TOLERANCE_PERCENT = 5;
+
+    // Number of steps in a row without a gain after which throughput is considered flat.
+    private static final int PATIENCE = 2;
+
+    private final Scenario scenario;
+    private long latencyTargetMillis = 500;
+    private double maxErrorRate = 0.01;
+    private long stepMillis = 5000;
+    private int maxConcurrency = 256;
+
+    /**
+     * Creates a probe for the given scenario with the default limits:
+     * 500 ms p99 target, 1% errors, 5 second steps and at most 256 workers.
+     *
+     * @param scenario the scenario every worker runs in a loop.
+     */
+    public CapacityProbe(Scenario scenario) {
+        this.scenario = scenario;
+    }
+
+    /**
+     * Sets the p99 latency of one scenario iteration above which a step counts as overloaded.
+     *
+     * @param latencyTargetMillis the p99 target in milliseconds.
+     */
+    public void setLatencyTargetMillis(long latencyTargetMillis) {
+        this.latencyTargetMillis = latencyTargetMillis;
+    }
+
+    /**
+     * Sets the fraction of failed iterations above which a step counts as overloaded.
+     *
+     * @param maxErrorRate the maximum error rate, e.g. 0.01 for 1%.
+     */
+    public void setMaxErrorRate(double maxErrorRate) {
+        this.maxErrorRate = maxErrorRate;
+    }
+
+    /**
+     * Sets how long each concurrency level is measured. A warm-up of a fifth of this is added in front.
+     *
+     * @param stepMillis the measurement window of a step in milliseconds.
+     */
+    public void setStepMillis(long stepMillis) {
+        this.stepMillis = stepMillis;
+    }
+
+    /**
+     * Sets the highest number of concurrent workers the probe may use.
+     *
+     * @param maxConcurrency the maximum number of workers.
+     */
+    public void setMaxConcurrency(int maxConcurrency) {
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    /**
+     * Runs the probe until throughput stops rising or a limit is exceeded.
+     *
+     * @return the report with every measured step and the knee.
+     */
+    public Report run() {
+        logger.info("Starting capacity probe for scenario '{}' (p99 target {} ms, max error rate {}, {} ms steps)",
+                scenario.getName(), latencyTargetMillis, maxErrorRate, stepMillis);
+        // With metrics enabled all requests share one pool; a smaller pool would cap the concurrency being probed.
+        RunMetrics.ensurePoolSize(maxConcurrency);
+
+        List<Step> steps = new ArrayList<>();
+        // The last step that raised throughput enough; gains and the back-off are measured from here.
+        Step anchor = null;
+        boolean slowStart = true;
+        int increment = 1;
+        int flatSteps = 0;
+        boolean firstStepRepeated = false;
+        int concurrency = Math.min(1, maxConcurrency);
+        String stopReason;
+
+        while (true) {
+            Step step = measure(concurrency);
+            steps.add(step);
+            logger.info("Capacity probe step: {}", step);
+
+            boolean healthy = isHealthy(step);
+            boolean progressed = healthy && (anchor == null || step.getRequestsPerSecond()
+                    >= anchor.getRequestsPerSecond() * (1 + requiredGain(anchor.getConcurrency(), concurrency)));
+            if (progressed) {
+                anchor = step;
+                flatSteps = 0;
+            } else if (healthy) {
+                flatSteps++;
+            }
+
+            if (slowStart && anchor == null && !healthy && !firstStepRepeated) {
+                // A first step that is already over the limits is more likely a cold JVM than the answer.
+                firstStepRepeated = true;
+                logger.info("Capacity probe: the first step exceeded the limits, measuring it once more");
+                continue;
+            }
+            if (slowStart && !progressed) {
+                // Doubling overshot: back off to the anchor and search the gap above it additively.
+                slowStart = false;
+                flatSteps = 0;
+                if (anchor == null) {
+                    stopReason = "even a single worker exceeded the limits";
+                    break;
+                }
+                increment = Math.max(1, anchor.getConcurrency() / 4);
+                concurrency = anchor.getConcurrency() + increment;
+                if (concurrency >= step.getConcurrency()) {
+                    stopReason = describe(step, healthy);
+                    break;
+                }
+                continue;
+            }
+            if (!healthy || flatSteps >= PATIENCE) {
+                stopReason = describe(step, healthy);
+                break;
+            }
+            if (concurrency >= maxConcurrency) {
+                stopReason = "reached the maximum of " + maxConcurrency + " workers";
+                break;
+            }
+            concurrency = Math.min(slowStart ? concurrency * 2 : concurrency + increment, maxConcurrency);
+        }
+
+        Report report = new Report(scenario.getName(), steps, findKnee(steps), stopReason);
+        logger.info("Capacity probe finished:\n{}", report);
+        return report;
+    }
+
+    private boolean isHealthy(Step step) {
+        return step.getTimedOutWorkers() == 0
+                && step.getP99Millis() <= latencyTargetMillis
+                && step.getErrorRate() <= maxErrorRate;
+    }
+
+    // The gain expected from going from one concurrency to another: MIN_GAIN for a doubling, less for smaller steps.
+    private static double requiredGain(int from, int to) {
+        return MIN_GAIN * Math.max(0.0, Math.min(1.0, (double) (to - from) / from));
+    }
+
+    /**
+     * Picks the knee: the lowest-concurrency healthy step within the tolerance of the highest healthy throughput.
+     */
+    private Step findKnee(List<Step> steps) {
+        double maxRequestsPerSecond = -1;
+        for (Step step : steps) {
+            if (isHealthy(step)) {
+                maxRequestsPerSecond = Math.max(maxRequestsPerSecond, step.getRequestsPerSecond());
+            }
+        }
+        Step knee = null;
+        for (Step step : steps) {
+            if (isHealthy(step)
+                    && step.getRequestsPerSecond() >= maxRequestsPerSecond * (100 - KNEE_TOLERANCE_PERCENT) / 100
+                    && (knee == null || step.getConcurrency() < knee.getConcurrency())) {
+                knee = step;
+            }
+        }
+        return knee;
+    }
+
+    private String describe(Step step, boolean healthy) {
+        if (healthy) {
+            return "throughput stopped rising at " + step.getConcurrency() + " workers";
+        }
+        if (step.getTimedOutWorkers() > 0) {
+            return step.getTimedOutWorkers() + " workers hung at " + step.getConcurrency() + " workers";
+        }
+        if (step.getErrorRate() > maxErrorRate) {
+            return "error rate exceeded " + maxErrorRate + " at " + step.getConcurrency() + " workers";
+        }
+        return "p99 latency exceeded " + latencyTargetMillis + " ms at " + step.getConcurrency() + " workers";
+    }
+
+    /**
+     * Runs the scenario with the given number of workers for one step and measures it.
+     *
+     * <p>
+     * Every worker first runs one unrecorded iteration; the window opens after all of them have done so and a
+     * short ramp-up has passed. Throughput counts each successful iteration by the share of its duration that
+     * falls inside the window, so iterations cut by the window edges neither inflate nor deflate it, however
+     * long they take compared to the window. Latency and errors also include the iterations still in flight when the window closes, because under
+     * overload those are exactly the slowest ones. A worker that has not finished long after the window is counted as a failed
+     * iteration and marks the step as unhealthy.
+     * </p>
+     */
+    private Step measure(int concurrency) {
+        // Warm-up iterations and the last iteration after the window may both take up to ten times the latency target.
+        long slack = TimeUnit.MILLISECONDS.toNanos(latencyTargetMillis * 10);
+        CountDownLatch warmedUp = new CountDownLatch(concurrency);
+        CountDownLatch windowSet = new CountDownLatch(1);
+        // Start and end of the measurement window; written before windowSet opens, read by the workers after it.
+        long[] window = new long[2];
+
+        ExecutorService workers = Executors.newFixedThreadPool(concurrency, task -> {
+            Thread thread = new Thread(task, "capacity-probe-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        List<WorkerResult> results = new ArrayList<>();
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < concurrency; i++) {
+            WorkerResult result = new WorkerResult();
+            results.add(result);
+            futures.add(workers.submit(() -> runWorker(result, warmedUp, windowSet, window)));
+        }
+        workers.shutdown();
+
+        try {
+            if (!warmedUp.await(slack, TimeUnit.NANOSECONDS)) {
+                logger.warn("Not all capacity probe workers finished warming up at {} workers", concurrency);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            workers.shutdownNow();
+            throw new IllegalStateException("Capacity probe was interrupted", e);
+        }
+        long windowStart = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(stepMillis / 5);
+        long windowEnd = windowStart + TimeUnit.MILLISECONDS.toNanos(stepMillis);
+        long deadline = windowEnd + slack;
+        window[0] = windowStart;
+        window[1] = windowEnd;
+        windowSet.countDown();
+
+        int timedOutWorkers = 0;
+        for (Future<?> future : futures) {
+            try {
+                future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                future.cancel(true);
+                timedOutWorkers++;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                workers.shutdownNow();
+                throw new IllegalStateException("Capacity probe was interrupted", e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Capacity probe worker failed", e.getCause());
+            }
+        }
+        if (timedOutWorkers > 0) {
+            logger.warn("{} capacity probe workers did not finish in time at {} workers", timedOutWorkers, concurrency);
+        }
+
+        // Timed-out workers keep what they recorded so far; their unfinished iteration counts as an error.
+        List<Long> latencies = new ArrayList<>();
+        long errors = timedOutWorkers;
+        double iterationsInWindow = 0;
+        for (WorkerResult result : results) {
+            synchronized (result) {
+                latencies.addAll(result.latencies);
+                errors += result.errors;
+                iterationsInWindow += result.iterationsInWindow;
+            }
+        }
+
+        Collections.sort(latencies);
+        long completed = latencies.size() + errors;
+        double seconds = stepMillis / 1000.0;
+        double requestsPerSecond = iterationsInWindow * scenario.getRequestsPerIteration() / seconds;
+        double p99Millis = latencies.isEmpty()
+                ? Double.POSITIVE_INFINITY
+                : latencies.get((int) Math.ceil(latencies.size() * 0.99) - 1) / 1_000_000.0;
+        double errorRate = completed == 0 ? 1.0 : (double) errors / completed;
+        return new Step(concurrency, requestsPerSecond, p99Millis, errorRate, timedOutWorkers);
+    }
+
+    /**
+     * The loop of a single worker: it runs one unrecorded warm-up iteration, waits for the window to be set,
+     * then runs iterations until the window has ended. It records every iteration that finishes after the
+     * window opens, including the one still running when the window closes.
+     */
+    private void runWorker(WorkerResult result, CountDownLatch warmedUp, CountDownLatch windowSet, long[] window) {
+        Runnable iteration;
+        try {
+            iteration = scenario.newWorker();
+        } catch (RuntimeException | AssertionError e) {
+            logger.error("Could not prepare capacity probe worker", e);
+            warmedUp.countDown();
+            result.record(false, 0, 0);
+            return;
+        }
+        try {
+            iteration.run();
+        } catch (RuntimeException | AssertionError e) {
+            // Only the recorded iterations decide the error rate.
+        } finally {
+            warmedUp.countDown();
+        }
+        try {
+            windowSet.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        long windowStart = window[0];
+        long windowEnd = window[1];
+        while (System.nanoTime() < windowEnd && !Thread.currentThread().isInterrupted()) {
+            long begin = System.nanoTime();
+            boolean ok;
+            try {
+                iteration.run();
+                ok = true;
+            } catch (RuntimeException | AssertionError e) {
+                ok = false;
+            }
+            long end = System.nanoTime();
+            if (end > windowStart) {
+                long inWindow = Math.min(end, windowEnd) - Math.max(begin, windowStart);
+                result.record(ok, end - begin, end > begin ? (double) inWindow / (end - begin) : 1.0);
+            }
+        }
+    }
+
+    /**
+     * What one worker recorded. It is read under its lock, so a worker that is still running after
+     * the deadline does not lose the iterations it already finished.
+     */
+    private static final class WorkerResult {
+        private final List<Long> latencies = new ArrayList<>();
+        private long errors;
+        private double iterationsInWindow;
+
+        synchronized void record(boolean ok, long latencyNanos, double windowShare) {
+            if (!ok) {
+                errors++;
+                return;
+            }
+            latencies.add(latencyNanos);
+            iterationsInWindow += windowShare;
+        }
+    }
+
+    /**
+     * A scenario the probe can run: a name, the number of HTTP requests in one iteration, and a factory
+     * that prepares the iteration for one worker. The factory is called once per worker, so each worker
+     * gets its own state (e.g. its own TestContext).
+     */
+    public static final class Scenario {
+
+        private final String name;
+        private final int requestsPerIteration;
+        private final Supplier<Runnable> workerFactory;
+
+        /**
+         * @param name                 the scenario name used in logs and the report.
+         * @param requestsPerIteration how many HTTP requests one iteration sends.
+         * @param workerFactory        creates the iteration for one worker.
+         */
+        public Scenario(String name, int requestsPerIteration, Supplier<Runnable> workerFactory) {
+            this.name = name;
+            this.requestsPerIteration = requestsPerIteration;
+            this.workerFactory = workerFactory;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getRequestsPerIteration() {
+            return requestsPerIteration;
+        }
+
+        Runnable newWorker() {
+            return workerFactory.get();
+        }
+    }
+
+    /**
+     * The measurements of one concurrency level.
+     */
+    public static final class Step {
+
+        private final int concurrency;
+        private final double requestsPerSecond;
+        private final double p99Millis;
+        private final double errorRate;
+        private final int timedOutWorkers;
+
+        Step(int concurrency, double requestsPerSecond, double p99Millis, double errorRate, int timedOutWorkers) {
+            this.concurrency = concurrency;
+            this.requestsPerSecond = requestsPerSecond;
+            this.p99Millis = p99Millis;
+            this.errorRate = errorRate;
+            this.timedOutWorkers = timedOutWorkers;
+        }
+
+        public int getConcurrency() {
+            return concurrency;
+        }
+
+        public double getRequestsPerSecond() {
+            return requestsPerSecond;
+        }
+
+        public double getP99Millis() {
+            return p99Millis;
+        }
+
+        public double getErrorRate() {
+            return errorRate;
+        }
+
+        /**
+         * Returns how many workers were still stuck in an iteration long after the step had ended.
+         *
+         * @return the number of timed-out workers.
+         */
+        public int getTimedOutWorkers() {
+            return timedOutWorkers;
+        }
+
+        @Override
+        public String toString() {
+            String line = String.format("%4d workers: %9.1f req/s, p99 %8.1f ms, errors %5.1f%%",
+                    concurrency, requestsPerSecond, p99Millis, errorRate * 100);
+            return timedOutWorkers == 0 ? line : line + ", " + timedOutWorkers + " timed out";
+        }
+    }
+
+    /**
+     * The result of a probe run: every measured step, the knee and why the probe stopped.
+     */
+    public static final class Report {
+
+        private final String scenarioName;
+        private final List<Step> steps;
+        private final Step knee;
+        private final String stopReason;
+
+        Report(String scenarioName, List<Step> steps, Step knee, String stopReason) {
+            this.scenarioName = scenarioName;
+            this.steps = Collections.unmodifiableList(steps);
+            this.knee = knee;
+            this.stopReason = stopReason;
+        }
+
+        public List<Step> getSteps() {
+            return steps;
+        }
+
+        /**
+         * Returns the knee: the lowest-concurrency healthy step whose throughput is within
+         * {@value #KNEE_TOLERANCE_PERCENT}% of the highest healthy throughput, or null if no step stayed within the limits.
+         *
+         * @return the knee step.
+         */
+        public Step getKnee() {
+            return knee;
+        }
+
+        public String getStopReason() {
+            return stopReason;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder out = new StringBuilder("Scenario '").append(scenarioName).append("'\n");
+            for (Step step : steps) {
+                out.append(step == knee ? " -> " : "    ").append(step).append('\n');
+            }
+            out.append("Stopped because ").append(stopReason).append('\n');
+            if (knee == null) {
+                out.append("No sustainable concurrency found.");
+            } else {
+                out.append(String.format("Knee: %.1f req/s sustained at %d concurrent workers.",
+                        knee.getRequestsPerSecond(), knee.getConcurrency()));
+            }
+            return out.toString();
+        }
+    }
+}
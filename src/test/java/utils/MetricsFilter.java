@@ -0,0 +1,53 @@
+package utils;
+
+import io.restassured.filter.Filter;
+import io.restassured.filter.FilterContext;
+import io.restassured.response.Response;
+import io.restassured.specification.FilterableRequestSpecification;
+import io.restassured.specification.FilterableResponseSpecification;
+
+import java.util.regex.Pattern;
+
+/**
+ * MetricsFilter is a RestAssured filter that records every HTTP call in {@link RunMetrics}.
+ *
+ * <p>
+ * It is registered globally by {@link RunMetrics#startIfEnabled()}, so the step classes keep
+ * sending requests exactly as before. Numeric path segments are replaced with "{id}", which means
+ * "/booking/42" and "/booking/43" are reported together as "/booking/{id}".
+ * </p>
+ */
+public class MetricsFilter implements Filter {
+
+    private static final Pattern NUMERIC_SEGMENT = Pattern.compile("/\\d+(?=/|$)");
+
+    @Override
+    public Response filter(FilterableRequestSpecification requestSpec,
+                           FilterableResponseSpecification responseSpec,
+                           FilterContext ctx) {
+        String endpoint = requestSpec.getMethod() + " " + normalise(requestSpec.getUserDefinedPath());
+        RunMetrics.requestStarted();
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            Response response = ctx.next(requestSpec, responseSpec);
+            failed = response.getStatusCode() >= 400;
+            return response;
+        } finally {
+            RunMetrics.requestFinished(endpoint, System.nanoTime() - start, failed);
+        }
+    }
+
+    /**
+     * Turns a request path into an endpoint label by replacing numeric IDs with "{id}".
+     *
+     * @param path the path the request was sent to.
+     * @return the normalised path.
+     */
+    public static String normalise(String path) {
+        if (path == null || path.isEmpty()) {
+            return "/";
+        }
+        return NUMERIC_SEGMENT.matcher(path).replaceAll("/{id}");
+    }
+}
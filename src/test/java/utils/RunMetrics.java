@@ -0,0 +1,434 @@
+package utils;
+
+import com.sun.net.httpserver.HttpServer;
+import io.restassured.RestAssured;
+import io.restassured.config.HttpClientConfig;
+import io.restassured.config.RestAssuredConfig;
+import io.restassured.filter.Filter;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.apache.http.pool.ConnPoolControl;
+import org.apache.http.pool.PoolStats;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.lang.ref.Cleaner;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+
+/**
+ * RunMetrics collects live metrics while the test run is in progress and, when enabled,
+ * publishes them on a local HTTP endpoint in OpenMetrics text format.
+ *
+ * <p>
+ * The endpoint is switched off by default. Start the run with {@code -Dmetrics.port=9464}
+ * and scrape {@code http://127.0.0.1:9464/metrics} while the scenarios are running.
+ * </p>
+ * <ul>
+ *   <li>Requests, errors and latency per endpoint are recorded by {@link MetricsFilter}.</li>
+ *   <li>Scenario results are recorded by the Hooks class after each scenario.</li>
+ *   <li>Live TestContext instances are tracked until the garbage collector reclaims them.</li>
+ *   <li>Connection-pool state and JVM heap/GC figures are read at scrape time.</li>
+ * </ul>
+ *
+ * <p>
+ * Every counter is a {@link LongAdder}, which stripes its updates across cells, so parallel
+ * scenarios never contend on a single value. A scrape sums the cells without blocking writers.
+ * </p>
+ */
+public final class RunMetrics {
+
+    private static final Logger logger = LogManager.getLogger(RunMetrics.class);
+
+    // System property holding the port of the metrics endpoint. No value means "disabled".
+    public static final String PORT_PROPERTY = "metrics.port";
+
+    // System property for the size of the shared connection pool used while metrics are enabled.
+    public static final String POOL_SIZE_PROPERTY = "metrics.pool.size";
+
+    private static final String CONTENT_TYPE = "application/openmetrics-text; version=1.0.0; charset=utf-8";
+
+    // Upper bounds (in seconds) of the request latency histogram buckets.
+    private static final double[] LATENCY_BUCKETS = {0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10};
+
+    private static final Map<String, LongAdder> REQUESTS = new ConcurrentHashMap<>();
+    private static final Map<String, LongAdder> ERRORS = new ConcurrentHashMap<>();
+    private static final Map<String, Histogram> LATENCIES = new ConcurrentHashMap<>();
+
+    private static final LongAdder IN_FLIGHT = new LongAdder();
+    private static final LongAdder SCENARIOS_PASSED = new LongAdder();
+    private static final LongAdder SCENARIOS_FAILED = new LongAdder();
+    private static final LongAdder CONTEXTS_ALIVE = new LongAdder();
+
+    private static final Cleaner CLEANER = Cleaner.create();
+    private static final AtomicBoolean STARTED = new AtomicBoolean();
+
+    // Default size of the shared connection pool.
+    public static final int DEFAULT_POOL_SIZE = 50;
+
+    // Only set once the endpoint is running; RestAssured keeps its own connections otherwise.
+    private static volatile ConnPoolControl<HttpRoute> connectionPool;
+
+    // The JDK server's dispatcher thread is not a daemon, so it has to be stopped explicitly.
+    private static volatile HttpServer server;
+
+    // The thread that serves scrapes; HttpServer.stop() does not shut down an executor it was given.
+    private static ExecutorService serverThread;
+
+    // Puts RestAssured's configuration and filters back the way they were before start().
+    private static Runnable restoreRestAssured;
+
+    private RunMetrics() {
+    }
+
+    /**
+     * Returns true when the run was started with the {@code metrics.port} system property.
+     *
+     * @return whether the metrics endpoint is enabled.
+     */
+    public static boolean isEnabled() {
+        return System.getProperty(PORT_PROPERTY) != null;
+    }
+
+    /**
+     * Starts the metrics endpoint the first time it is called in a run with metrics enabled.
+     * A failure to start, including an invalid property value, is logged and never fails the test run.
+     */
+    public static void startIfEnabled() {
+        if (!isEnabled() || !STARTED.compareAndSet(false, true)) {
+            return;
+        }
+        int port;
+        int poolSize;
+        try {
+            port = Integer.parseInt(System.getProperty(PORT_PROPERTY).trim());
+            poolSize = Integer.parseInt(System.getProperty(POOL_SIZE_PROPERTY, String.valueOf(DEFAULT_POOL_SIZE)).trim());
+        } catch (NumberFormatException e) {
+            logger.error("Metrics endpoint not started: {} and {} must be whole numbers", PORT_PROPERTY, POOL_SIZE_PROPERTY, e);
+            return;
+        }
+        if (port < 0 || port > 65535 || poolSize < 1) {
+            logger.error("Metrics endpoint not started: {}={} must be a port number and {}={} must be at least 1",
+                    PORT_PROPERTY, port, POOL_SIZE_PROPERTY, poolSize);
+            return;
+        }
+        start(port, poolSize);
+    }
+
+    /**
+     * Starts the metrics endpoint on the given port (0 picks a free one) unless it is already running.
+     * It registers the {@link MetricsFilter} with RestAssured and routes all requests through
+     * a shared connection pool, so its state can be reported. {@link #stop()} undoes both.
+     *
+     * @param port     the loopback port to listen on, or 0 for any free port.
+     * @param poolSize the maximum number of pooled connections.
+     * @return true if the endpoint is running when this method returns.
+     */
+    @SuppressWarnings("deprecation") // RestAssured's client factory needs an AbstractHttpClient, so the 4.x legacy classes stay.
+    public static synchronized boolean start(int port, int poolSize) {
+        if (server != null) {
+            return true;
+        }
+        HttpServer endpoint;
+        try {
+            endpoint = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        } catch (IOException e) {
+            logger.error("Could not start metrics endpoint on port {}", port, e);
+            return false;
+        }
+        endpoint.createContext("/metrics", exchange -> {
+            byte[] body = scrape().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        ExecutorService executor = Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, "metrics-endpoint");
+            thread.setDaemon(true);
+            return thread;
+        });
+        endpoint.setExecutor(executor);
+
+        PoolingClientConnectionManager pool = new PoolingClientConnectionManager();
+        pool.setMaxTotal(poolSize);
+        pool.setDefaultMaxPerRoute(poolSize);
+        MetricsFilter filter = new MetricsFilter();
+        RestAssuredConfig previousConfig = RestAssured.config;
+        RestAssured.config = RestAssured.config().httpClient(HttpClientConfig.httpClientConfig()
+                .reuseHttpClientInstance()
+                .httpClientFactory(() -> new DefaultHttpClient(pool)));
+        RestAssured.filters(filter);
+        connectionPool = pool;
+        restoreRestAssured = () -> {
+            List<Filter> filters = new ArrayList<>(RestAssured.filters());
+            filters.remove(filter);
+            RestAssured.replaceFiltersWith(filters);
+            RestAssured.config = previousConfig;
+            pool.shutdown();
+        };
+
+        endpoint.start();
+        server = endpoint;
+        serverThread = executor;
+        logger.info("Metrics endpoint started on http://127.0.0.1:{}/metrics", getPort());
+        return true;
+    }
+
+    /**
+     * Raises the size of the shared connection pool to at least the given number of connections.
+     * Does nothing if the endpoint is not running, since RestAssured then opens its own connections.
+     *
+     * @param minSize the number of requests that must be able to run at the same time.
+     */
+    public static void ensurePoolSize(int minSize) {
+        ConnPoolControl<HttpRoute> pool = connectionPool;
+        if (pool != null && (pool.getMaxTotal() < minSize || pool.getDefaultMaxPerRoute() < minSize)) {
+            logger.info("Raising metrics connection pool from {} to {} connections", pool.getDefaultMaxPerRoute(), minSize);
+            pool.setMaxTotal(Math.max(pool.getMaxTotal(), minSize));
+            pool.setDefaultMaxPerRoute(minSize);
+        }
+    }
+
+    /**
+     * Returns whether the metrics endpoint is currently running.
+     *
+     * @return true while the endpoint is running.
+     */
+    public static boolean isRunning() {
+        return server != null;
+    }
+
+    /**
+     * Returns the port the metrics endpoint listens on.
+     *
+     * @return the port, or -1 if the endpoint is not running.
+     */
+    public static int getPort() {
+        HttpServer running = server;
+        return running == null ? -1 : running.getAddress().getPort();
+    }
+
+    /**
+     * Stops the metrics endpoint, if it was started, so the JVM can exit at the end of the run.
+     * RestAssured gets its previous configuration back and the metrics filter is removed.
+     */
+    public static synchronized void stop() {
+        HttpServer running = server;
+        if (running != null) {
+            server = null;
+            running.stop(0);
+            serverThread.shutdownNow();
+            serverThread = null;
+            connectionPool = null;
+            restoreRestAssured.run();
+            restoreRestAssured = null;
+            logger.info("Metrics endpoint stopped. Final values:\n{}", scrape());
+        }
+    }
+
+    /**
+     * Marks the start of an HTTP request.
+     */
+    static void requestStarted() {
+        IN_FLIGHT.increment();
+    }
+
+    /**
+     * Records the outcome of an HTTP request that was started with {@link #requestStarted()}.
+     *
+     * @param endpoint      the endpoint label, e.g. "GET /booking/{id}".
+     * @param elapsedNanos  how long the request took.
+     * @param failed        whether the request failed or returned an error status.
+     */
+    static void requestFinished(String endpoint, long elapsedNanos, boolean failed) {
+        IN_FLIGHT.decrement();
+        REQUESTS.computeIfAbsent(endpoint, key -> new LongAdder()).increment();
+        if (failed) {
+            ERRORS.computeIfAbsent(endpoint, key -> new LongAdder()).increment();
+        }
+        LATENCIES.computeIfAbsent(endpoint, key -> new Histogram()).observe(elapsedNanos / 1_000_000_000.0);
+    }
+
+    /**
+     * Records the result of a finished scenario.
+     *
+     * @param failed whether the scenario failed.
+     */
+    public static void scenarioFinished(boolean failed) {
+        if (failed) {
+            SCENARIOS_FAILED.increment();
+        } else {
+            SCENARIOS_PASSED.increment();
+        }
+    }
+
+    /**
+     * Counts a new TestContext as alive until the garbage collector reclaims it.
+     *
+     * @param context the TestContext that has just been created.
+     */
+    static void trackContext(TestContext context) {
+        CONTEXTS_ALIVE.increment();
+        CLEANER.register(context, CONTEXTS_ALIVE::decrement);
+    }
+
+    /**
+     * Renders all metrics in OpenMetrics text format.
+     *
+     * @return the exposition text, terminated by "# EOF".
+     */
+    static String scrape() {
+        StringBuilder out = new StringBuilder();
+
+        out.append("# TYPE booker_http_requests counter\n");
+        out.append("# HELP booker_http_requests HTTP requests sent, per endpoint.\n");
+        forEachSorted(REQUESTS, (endpoint, count) ->
+                out.append("booker_http_requests_total").append(labels(endpoint)).append(' ').append(count.sum()).append('\n'));
+
+        out.append("# TYPE booker_http_errors counter\n");
+        out.append("# HELP booker_http_errors HTTP requests that threw or returned a 4xx/5xx status, per endpoint.\n");
+        forEachSorted(ERRORS, (endpoint, count) ->
+                out.append("booker_http_errors_total").append(labels(endpoint)).append(' ').append(count.sum()).append('\n'));
+
+        out.append("# TYPE booker_http_request_duration_seconds histogram\n");
+        out.append("# UNIT booker_http_request_duration_seconds seconds\n");
+        out.append("# HELP booker_http_request_duration_seconds HTTP request latency, per endpoint.\n");
+        forEachSorted(LATENCIES, (endpoint, histogram) -> histogram.render(out, endpoint));
+
+        gauge(out, "booker_http_requests_in_flight", "HTTP requests currently waiting for a response.", IN_FLIGHT.sum());
+
+        out.append("# TYPE booker_scenarios counter\n");
+        out.append("# HELP booker_scenarios Finished scenarios, per result.\n");
+        out.append("booker_scenarios_total{result=\"passed\"} ").append(SCENARIOS_PASSED.sum()).append('\n');
+        out.append("booker_scenarios_total{result=\"failed\"} ").append(SCENARIOS_FAILED.sum()).append('\n');
+
+        gauge(out, "booker_test_contexts_alive", "TestContext instances not yet reclaimed by the garbage collector.",
+                CONTEXTS_ALIVE.sum());
+
+        ConnPoolControl<HttpRoute> pool = connectionPool;
+        if (pool != null) {
+            PoolStats stats = pool.getTotalStats();
+            out.append("# TYPE booker_connection_pool_connections gauge\n");
+            out.append("# HELP booker_connection_pool_connections HTTP connections in the shared pool, per state.\n");
+            out.append("booker_connection_pool_connections{state=\"leased\"} ").append(stats.getLeased()).append('\n');
+            out.append("booker_connection_pool_connections{state=\"available\"} ").append(stats.getAvailable()).append('\n');
+            gauge(out, "booker_connection_pool_pending", "Requests waiting for a pooled connection.", stats.getPending());
+            gauge(out, "booker_connection_pool_max", "Maximum number of pooled connections.", stats.getMax());
+        }
+
+        MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        out.append("# TYPE jvm_memory_heap_bytes gauge\n");
+        out.append("# UNIT jvm_memory_heap_bytes bytes\n");
+        out.append("# HELP jvm_memory_heap_bytes JVM heap memory, per area.\n");
+        out.append("jvm_memory_heap_bytes{area=\"used\"} ").append(heap.getUsed()).append('\n');
+        out.append("jvm_memory_heap_bytes{area=\"committed\"} ").append(heap.getCommitted()).append('\n');
+        out.append("jvm_memory_heap_bytes{area=\"max\"} ").append(heap.getMax()).append('\n');
+
+        out.append("# TYPE jvm_gc_collections counter\n");
+        out.append("# HELP jvm_gc_collections Garbage collections, per collector.\n");
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            out.append("jvm_gc_collections_total{gc=\"").append(escapeLabelValue(gc.getName())).append("\"} ")
+                    .append(Math.max(0, gc.getCollectionCount())).append('\n');
+        }
+        out.append("# TYPE jvm_gc_collection_seconds counter\n");
+        out.append("# UNIT jvm_gc_collection_seconds seconds\n");
+        out.append("# HELP jvm_gc_collection_seconds Time spent in garbage collection, per collector.\n");
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            out.append("jvm_gc_collection_seconds_total{gc=\"").append(escapeLabelValue(gc.getName())).append("\"} ")
+                    .append(Math.max(0, gc.getCollectionTime()) / 1000.0).append('\n');
+        }
+
+        out.append("# EOF\n");
+        return out.toString();
+    }
+
+    private static void gauge(StringBuilder out, String name, String help, long value) {
+        out.append("# TYPE ").append(name).append(" gauge\n");
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append(name).append(' ').append(value).append('\n');
+    }
+
+    // Sorting keeps the series in a stable order between scrapes, which makes diffs readable.
+    private static <V> void forEachSorted(Map<String, V> series, BiConsumer<String, V> action) {
+        new TreeMap<>(series).forEach(action);
+    }
+
+    // Turns an endpoint label such as "GET /booking/{id}" into {method="GET",endpoint="/booking/{id}"}.
+    private static String labels(String endpoint) {
+        int space = endpoint.indexOf(' ');
+        return "{method=\"" + escapeLabelValue(endpoint.substring(0, space))
+                + "\",endpoint=\"" + escapeLabelValue(endpoint.substring(space + 1)) + "\"}";
+    }
+
+    /**
+     * Escapes a label value as OpenMetrics requires: backslash, double quote and line feed.
+     *
+     * @param value the raw label value.
+     * @return the escaped value, ready to be put between double quotes.
+     */
+    public static String escapeLabelValue(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    /**
+     * A fixed-bucket latency histogram. Each bucket counts only its own observations;
+     * the cumulative counts OpenMetrics expects are built when rendering.
+     */
+    private static final class Histogram {
+
+        private final LongAdder[] buckets = new LongAdder[LATENCY_BUCKETS.length + 1];
+        private final DoubleAdder sum = new DoubleAdder();
+
+        Histogram() {
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        void observe(double seconds) {
+            int bucket = 0;
+            while (bucket < LATENCY_BUCKETS.length && seconds > LATENCY_BUCKETS[bucket]) {
+                bucket++;
+            }
+            buckets[bucket].increment();
+            sum.add(seconds);
+        }
+
+        void render(StringBuilder out, String endpoint) {
+            String labels = labels(endpoint);
+            String prefix = labels.substring(0, labels.length() - 1);
+            long cumulative = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                cumulative += buckets[i].sum();
+                String le = i < LATENCY_BUCKETS.length ? Double.toString(LATENCY_BUCKETS[i]) : "+Inf";
+                out.append("booker_http_request_duration_seconds_bucket").append(prefix)
+                        .append(",le=\"").append(le).append("\"} ").append(cumulative).append('\n');
+            }
+            // _count must equal the +Inf bucket, so it is taken from the buckets rather than a separate adder.
+            out.append("booker_http_request_duration_seconds_count").append(labels).append(' ')
+                    .append(cumulative).append('\n');
+            out.append("booker_http_request_duration_seconds_sum").append(labels).append(' ')
+                    .append(sum.sum()).append('\n');
+        }
+    }
+}
@@ -47,6 +47,7 @@ public class TestContext {
      * to instantiate TestContext automatically.
      */
     public TestContext() {
+        RunMetrics.trackContext(this);
         logger.debug("TestContext created.");
     }
 
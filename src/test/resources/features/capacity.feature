@@ -0,0 +1,15 @@
+Feature: Booking API capacity probe
+
+  # 1) Probe a local stand-in whose capacity is known: 8 slots x 200 ms = 40 requests per second
+  #    The service time is far above the client's own cost per request, so the stand-in sets the limit.
+  Scenario: Find the knee of create-then-get on a stand-in with a known capacity
+    Given a local booking stand-in that serves 8 requests at a time in 200 ms each
+    When I probe the capacity of the "create-then-get" scenario up to 64 workers with a p99 target of 1500 ms and 5 second steps
+    Then the knee should be between 6 and 16 concurrent workers
+    And the knee throughput should be between 85 and 105 percent of the stand-in capacity
+
+  # 2) Probe the real API (opt-in only: mvn test -Dcucumber.filter.tags=@live-probe)
+  @live-probe
+  Scenario: Find the knee of create-then-get on the live booking API
+    When I probe the capacity of the "create-then-get" scenario up to 64 workers with a p99 target of 3000 ms and 10 second steps
+    Then the probe should report a knee
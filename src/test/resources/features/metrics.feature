@@ -0,0 +1,33 @@
+Feature: Live metrics endpoint
+
+  # 1) Requests sent during a scenario show up in the scraped metrics
+  Scenario: Scrape request counts and latency from the metrics endpoint
+    Given the metrics endpoint is running
+    And a local target server that answers requests to /booking
+    When I send 1 POST request to "/booking" on the local target server
+    And I send 2 GET requests to "/booking/42" on the local target server
+    And I send 1 GET request to "/ping" on the local target server
+    And I scrape the metrics endpoint
+    Then response status code should be 200
+    And the metrics should be valid OpenMetrics text
+    And the metric 'booker_http_requests_total{method="POST",endpoint="/booking"}' should have grown by 1
+    And the metric 'booker_http_requests_total{method="GET",endpoint="/booking/{id}"}' should have grown by 2
+    And the metric 'booker_http_request_duration_seconds_count{method="GET",endpoint="/booking/{id}"}' should have grown by 2
+    And the metric 'booker_http_errors_total{method="GET",endpoint="/booking/{id}"}' should have grown by 0
+    And the metric 'booker_http_errors_total{method="GET",endpoint="/ping"}' should have grown by 1
+    And the metric 'booker_http_requests_total{method="GET",endpoint="/metrics"}' should have grown by 0
+
+  # 2) Numeric IDs are grouped into one endpoint, and label values are escaped
+  Scenario: Group request paths and escape label values
+    Then request paths should be reported like this:
+      | path             | endpoint            |
+      | /booking/42      | /booking/{id}       |
+      | /booking/42/next | /booking/{id}/next  |
+      | /booking         | /booking            |
+      | /booking/abc     | /booking/abc        |
+      |                  | /                   |
+    And label values should be escaped like this:
+      | value      | escaped      |
+      | say "hi"   | say \\"hi\\" |
+      | C:\\temp   | C:\\\\temp   |
+      | two\nlines | two\\nlines  |